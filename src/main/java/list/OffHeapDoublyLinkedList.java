@@ -0,0 +1,514 @@
+package list;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Doubly linked list whose nodes live outside the Java heap. Every node is a fixed-size slot
+ * holding the prev/next slot indexes followed by the record encoded by a {@link RecordCodec}.
+ * Slots are allocated in chunks of direct (or memory-mapped) buffers and removed slots are
+ * recycled through a free list, so the heap only holds one buffer reference per chunk.
+ * <p>
+ * {@link #close()} frees the chunks right away instead of waiting for the garbage collector; the
+ * list cannot be used afterwards.
+ */
+public class OffHeapDoublyLinkedList<E> implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_CAPACITY = 1 << 16;
+
+    private static final int NIL = -1;
+
+    private static final int PREV_OFFSET = 0;
+    private static final int NEXT_OFFSET = 4;
+    private static final int DATA_OFFSET = 8;
+
+    // Mapped file header: magic, recordSize, chunkCapacity, first, last, size, freeHead, allocated
+    private static final int MAGIC = 0x4F484C31;
+    private static final int HEADER_SIZE = 8 * Integer.BYTES;
+
+    // sun.misc.Unsafe.invokeCleaner, looked up reflectively so the build stays free of internal API warnings
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Exception CLEANER_FAILURE;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Exception failure = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            failure = e;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER_FAILURE = failure;
+    }
+
+    private final RecordCodec<E> codec;
+    private final int slotSize;
+    private final int chunkCapacity;
+    private final FileChannel channel;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private MappedByteBuffer header;
+
+    private int first = NIL;
+    private int last = NIL;
+    private int size;
+    private int freeHead = NIL;
+    private int allocated;
+    private boolean closed;
+
+    public OffHeapDoublyLinkedList(RecordCodec<E> codec) {
+        this(codec, DEFAULT_CHUNK_CAPACITY);
+    }
+
+    public OffHeapDoublyLinkedList(RecordCodec<E> codec, int chunkCapacity) {
+        this(codec, chunkCapacity, null);
+    }
+
+    private OffHeapDoublyLinkedList(RecordCodec<E> codec, int chunkCapacity, FileChannel channel) {
+        if (codec.recordSize() <= 0) {
+            throw new IllegalArgumentException("Record size must be positive: " + codec.recordSize());
+        }
+        if (chunkCapacity <= 0) {
+            throw new IllegalArgumentException("Chunk capacity must be positive: " + chunkCapacity);
+        }
+        this.codec = codec;
+        this.slotSize = DATA_OFFSET + codec.recordSize();
+        if ((long) slotSize * chunkCapacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk of " + chunkCapacity + " slots exceeds 2GB");
+        }
+        this.chunkCapacity = chunkCapacity;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a list backed by a memory-mapped file. If the file already holds a list it is
+     * reopened with the chunk capacity it was created with; otherwise a new list is created with
+     * {@code chunkCapacity}. Every completed operation is written through to the mapped pages, so
+     * the file reflects the list after its last operation; {@link #flush()} forces those pages to
+     * disk. A single operation is not atomic, so a crash while it runs can leave the file corrupt.
+     */
+    public static <E> OffHeapDoublyLinkedList<E> mapped(Path file, RecordCodec<E> codec, int chunkCapacity)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = null;
+        OffHeapDoublyLinkedList<E> list = null;
+        try {
+            long fileSize = channel.size();
+            boolean existing = fileSize > 0;
+            if (existing && fileSize < HEADER_SIZE) {
+                throw new IOException("Not an off-heap list file: " + file);
+            }
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (existing) {
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not an off-heap list file: " + file);
+                }
+                if (header.getInt(4) != codec.recordSize()) {
+                    throw new IOException("Record size mismatch in " + file + ": expected "
+                            + codec.recordSize() + " but was " + header.getInt(4));
+                }
+                chunkCapacity = header.getInt(8);
+                if (chunkCapacity <= 0
+                        || (long) (DATA_OFFSET + codec.recordSize()) * chunkCapacity > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid chunk capacity in " + file + ": " + chunkCapacity);
+                }
+            }
+            list = new OffHeapDoublyLinkedList<>(codec, chunkCapacity, channel);
+            list.header = header;
+            if (existing) {
+                list.readHeader(file, fileSize);
+            } else {
+                list.writeHeader();
+            }
+            return list;
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (list != null) {
+                    list.chunks.forEach(OffHeapDoublyLinkedList::free);
+                }
+                if (header != null) {
+                    free(header);
+                }
+            } finally {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void addFirst(E element) {
+        ensureOpen();
+        int newSlot = allocate(element, NIL, first);
+        if (first != NIL) {
+            setPrev(first, newSlot);
+        } else {
+            last = newSlot;
+        }
+        first = newSlot;
+        size++;
+        syncHeader();
+    }
+
+    public E getFirst() {
+        ensureOpen();
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return read(first);
+    }
+
+    public void addLast(E element) {
+        ensureOpen();
+        int newSlot = allocate(element, last, NIL);
+        if (last != NIL) {
+            setNext(last, newSlot);
+        } else {
+            first = newSlot;
+        }
+        last = newSlot;
+        size++;
+        syncHeader();
+    }
+
+    public E getLast() {
+        ensureOpen();
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return read(last);
+    }
+
+    public void add(E element, int index) {
+        ensureOpen();
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (index == 0) {
+            addFirst(element);
+        } else if (index == size) {
+            addLast(element);
+        } else {
+            int nextSlot = getSlot(index);
+            int prevSlot = prev(nextSlot);
+            int newSlot = allocate(element, prevSlot, nextSlot);
+            setNext(prevSlot, newSlot);
+            setPrev(nextSlot, newSlot);
+            size++;
+            syncHeader();
+        }
+    }
+
+    public E get(int index) {
+        ensureOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return read(getSlot(index));
+    }
+
+    public E removeFirst() {
+        ensureOpen();
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return unlink(first);
+    }
+
+    public E removeLast() {
+        ensureOpen();
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return unlink(last);
+    }
+
+    public E remove(int index) {
+        ensureOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return unlink(getSlot(index));
+    }
+
+    public boolean contains(E element) {
+        return indexOf(element) != -1;
+    }
+
+    /**
+     * Empties the list while keeping the chunks already allocated for reuse.
+     */
+    public void clear() {
+        ensureOpen();
+        first = NIL;
+        last = NIL;
+        size = 0;
+        freeHead = NIL;
+        allocated = 0;
+        syncHeader();
+    }
+
+    public int indexOf(E element) {
+        ensureOpen();
+        int current = first;
+        int index = 0;
+        while (current != NIL) {
+            if (read(current).equals(element)) {
+                return index;
+            }
+            current = next(current);
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * Forces the mapped pages to disk. Does nothing for lists that are not file-backed.
+     */
+    public void flush() {
+        ensureOpen();
+        force();
+    }
+
+    /**
+     * Flushes and closes the backing file when there is one, then frees the chunks.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (channel != null) {
+                try {
+                    force();
+                } finally {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closed = true;
+            try {
+                chunks.forEach(OffHeapDoublyLinkedList::free);
+                if (header != null) {
+                    free(header);
+                }
+            } finally {
+                chunks.clear();
+                header = null;
+            }
+        }
+    }
+
+    private E unlink(int slot) {
+        E data = read(slot);
+        int prevSlot = prev(slot);
+        int nextSlot = next(slot);
+        if (prevSlot != NIL) {
+            setNext(prevSlot, nextSlot);
+        } else {
+            first = nextSlot;
+        }
+        if (nextSlot != NIL) {
+            setPrev(nextSlot, prevSlot);
+        } else {
+            last = prevSlot;
+        }
+        release(slot);
+        size--;
+        syncHeader();
+        return data;
+    }
+
+    private int getSlot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        int current;
+        if (index < size / 2) {
+            current = first;
+            for (int i = 0; i < index; i++) {
+                current = next(current);
+            }
+        } else {
+            current = last;
+            for (int i = size - 1; i > index; i--) {
+                current = prev(current);
+            }
+        }
+        return current;
+    }
+
+    private int allocate(E element, int prevSlot, int nextSlot) {
+        boolean reused = freeHead != NIL;
+        int slot;
+        if (reused) {
+            slot = freeHead;
+        } else {
+            if (allocated == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap list is full");
+            }
+            if (allocated == (long) chunks.size() * chunkCapacity) {
+                addChunk();
+            }
+            slot = allocated;
+        }
+        // Encode before claiming the slot so a failing codec does not leak it
+        codec.write(chunk(slot), offset(slot) + DATA_OFFSET, element);
+        if (reused) {
+            freeHead = next(slot);
+        } else {
+            allocated++;
+        }
+        setPrev(slot, prevSlot);
+        setNext(slot, nextSlot);
+        return slot;
+    }
+
+    private void release(int slot) {
+        setNext(slot, freeHead);
+        freeHead = slot;
+    }
+
+    private void addChunk() {
+        int chunkBytes = slotSize * chunkCapacity;
+        if (channel == null) {
+            chunks.add(ByteBuffer.allocateDirect(chunkBytes));
+            return;
+        }
+        try {
+            long position = HEADER_SIZE + (long) chunks.size() * chunkBytes;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks.get(slot / chunkCapacity);
+    }
+
+    private int offset(int slot) {
+        return (slot % chunkCapacity) * slotSize;
+    }
+
+    private E read(int slot) {
+        return codec.read(chunk(slot), offset(slot) + DATA_OFFSET);
+    }
+
+    private int prev(int slot) {
+        return chunk(slot).getInt(offset(slot) + PREV_OFFSET);
+    }
+
+    private int next(int slot) {
+        return chunk(slot).getInt(offset(slot) + NEXT_OFFSET);
+    }
+
+    private void setPrev(int slot, int prevSlot) {
+        chunk(slot).putInt(offset(slot) + PREV_OFFSET, prevSlot);
+    }
+
+    private void setNext(int slot, int nextSlot) {
+        chunk(slot).putInt(offset(slot) + NEXT_OFFSET, nextSlot);
+    }
+
+    private void readHeader(Path file, long fileSize) throws IOException {
+        first = header.getInt(12);
+        last = header.getInt(16);
+        size = header.getInt(20);
+        freeHead = header.getInt(24);
+        allocated = header.getInt(28);
+        if (size < 0 || size > allocated
+                || !isSlotOrNil(first) || !isSlotOrNil(last) || !isSlotOrNil(freeHead)
+                || (first == NIL) != (size == 0) || (last == NIL) != (size == 0)) {
+            throw new IOException("Corrupt off-heap list header in " + file);
+        }
+        long chunkCount = ((long) allocated + chunkCapacity - 1) / chunkCapacity;
+        if (HEADER_SIZE + chunkCount * slotSize * chunkCapacity > fileSize) {
+            throw new IOException("Off-heap list file is truncated: " + file);
+        }
+        while ((long) chunks.size() * chunkCapacity < allocated) {
+            addChunk();
+        }
+    }
+
+    private boolean isSlotOrNil(int slot) {
+        return slot == NIL || (slot >= 0 && slot < allocated);
+    }
+
+    private void writeHeader() {
+        header.putInt(0, MAGIC);
+        header.putInt(4, codec.recordSize());
+        header.putInt(8, chunkCapacity);
+        syncHeader();
+    }
+
+    private void syncHeader() {
+        if (header == null) {
+            return;
+        }
+        header.putInt(12, first);
+        header.putInt(16, last);
+        header.putInt(20, size);
+        header.putInt(24, freeHead);
+        header.putInt(28, allocated);
+    }
+
+    private void force() {
+        if (channel == null) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        header.force();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("List is closed");
+        }
+    }
+
+    private static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            throw new IllegalStateException("Cannot free off-heap memory: Unsafe.invokeCleaner is unavailable",
+                    CLEANER_FAILURE);
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot free off-heap memory", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Cannot free off-heap memory", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package list;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout encoding of a record stored by {@link OffHeapDoublyLinkedList}.
+ * Implementations must use absolute {@link ByteBuffer} access and never touch
+ * more than {@link #recordSize()} bytes starting at {@code offset}.
+ */
+public interface RecordCodec<E> {
+
+    int recordSize();
+
+    void write(ByteBuffer buffer, int offset, E record);
+
+    E read(ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,359 @@
+package list;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OffHeapDoublyLinkedListTest {
+
+    private static final RecordCodec<Integer> INT_CODEC = new RecordCodec<>() {
+
+        @Override
+        public int recordSize() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Integer record) {
+            buffer.putInt(offset, record);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    private OffHeapDoublyLinkedList<Integer> list;
+
+    @BeforeEach
+    public void setUp() {
+        // Small chunks so the tests also cover growing across several buffers
+        list = new OffHeapDoublyLinkedList<>(INT_CODEC, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        list.close();
+    }
+
+    @Test
+    void testAddFirstAndGetFirst() {
+        list.addFirst(5);
+        Assertions.assertEquals(5, list.getFirst());
+
+        list.addFirst(10);
+        Assertions.assertEquals(10, list.getFirst());
+    }
+
+    @Test
+    void testAddLastAndGetLast() {
+        list.addLast(15);
+        Assertions.assertEquals(15, list.getLast());
+
+        list.addLast(20);
+        Assertions.assertEquals(20, list.getLast());
+    }
+
+    @Test
+    void testAddAndGet() {
+        list.add(25, 0);
+        list.add(35, 1);
+        list.add(30, 1);
+
+        Assertions.assertEquals(25, list.get(0));
+        Assertions.assertEquals(30, list.get(1));
+        Assertions.assertEquals(35, list.get(2));
+    }
+
+    @Test
+    void testRemoveFirst() {
+        list.addFirst(40);
+        list.addFirst(45);
+
+        Assertions.assertEquals(45, list.removeFirst());
+        Assertions.assertEquals(40, list.getFirst());
+        Assertions.assertEquals(40, list.removeFirst());
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void testRemoveLast() {
+        list.addLast(50);
+        list.addLast(55);
+
+        Assertions.assertEquals(55, list.removeLast());
+        Assertions.assertEquals(50, list.getLast());
+        Assertions.assertEquals(50, list.removeLast());
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void testRemove() {
+        list.add(60, 0);
+        list.add(70, 1);
+        list.add(65, 1);
+
+        Assertions.assertEquals(65, list.remove(1));
+        Assertions.assertEquals(60, list.get(0));
+        Assertions.assertEquals(70, list.get(1));
+        Assertions.assertEquals(2, list.size());
+    }
+
+    @Test
+    void testRemovedSlotsAreReused() {
+        for (int i = 0; i < 6; i++) {
+            list.addLast(i);
+        }
+        list.remove(4);
+        list.remove(1);
+        list.add(10, 2);
+        list.addFirst(11);
+
+        Assertions.assertEquals(6, list.size());
+        Assertions.assertEquals(11, list.get(0));
+        Assertions.assertEquals(0, list.get(1));
+        Assertions.assertEquals(2, list.get(2));
+        Assertions.assertEquals(10, list.get(3));
+        Assertions.assertEquals(3, list.get(4));
+        Assertions.assertEquals(5, list.get(5));
+    }
+
+    @Test
+    void testContains() {
+        list.add(75, 0);
+        list.add(85, 1);
+
+        Assertions.assertTrue(list.contains(75));
+        Assertions.assertTrue(list.contains(85));
+        Assertions.assertFalse(list.contains(80));
+    }
+
+    @Test
+    void testIsEmpty() {
+        Assertions.assertTrue(list.isEmpty());
+
+        list.addFirst(90);
+        Assertions.assertFalse(list.isEmpty());
+
+        list.removeFirst();
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void testSize() {
+        Assertions.assertEquals(0, list.size());
+
+        list.addFirst(95);
+        Assertions.assertEquals(1, list.size());
+
+        list.addLast(100);
+        Assertions.assertEquals(2, list.size());
+
+        list.removeFirst();
+        Assertions.assertEquals(1, list.size());
+
+        list.removeLast();
+        Assertions.assertEquals(0, list.size());
+    }
+
+    @Test
+    void testClear() {
+        list.addFirst(105);
+        list.addLast(110);
+        list.add(107, 1);
+
+        Assertions.assertFalse(list.isEmpty());
+        Assertions.assertEquals(3, list.size());
+
+        list.clear();
+
+        Assertions.assertTrue(list.isEmpty());
+        Assertions.assertEquals(0, list.size());
+    }
+
+    @Test
+    void testIndexOf() {
+        list.addFirst(115);
+        list.addLast(120);
+        list.add(117, 1);
+
+        Assertions.assertEquals(0, list.indexOf(115));
+        Assertions.assertEquals(1, list.indexOf(117));
+        Assertions.assertEquals(2, list.indexOf(120));
+        Assertions.assertEquals(-1, list.indexOf(125));
+    }
+
+    @Test
+    void testClose() {
+        list.addFirst(130);
+        list.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> list.getFirst());
+        Assertions.assertThrows(IllegalStateException.class, () -> list.addLast(135));
+    }
+
+    @Test
+    void testMappedListSurvivesReopen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+            for (int i = 0; i < 5; i++) {
+                mapped.addLast(i);
+            }
+            mapped.remove(2);
+        }
+
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 8)) {
+            Assertions.assertEquals(4, mapped.size());
+            Assertions.assertEquals(0, mapped.get(0));
+            Assertions.assertEquals(1, mapped.get(1));
+            Assertions.assertEquals(3, mapped.get(2));
+            Assertions.assertEquals(4, mapped.get(3));
+
+            mapped.addFirst(140);
+            Assertions.assertEquals(140, mapped.getFirst());
+            Assertions.assertEquals(5, mapped.size());
+        }
+    }
+
+    @Test
+    void testMappedListReopensWithoutClose(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+            mapped.addLast(0);
+            mapped.addLast(1);
+            mapped.addLast(2);
+            mapped.flush();
+            mapped.removeFirst();
+            mapped.addLast(9);
+
+            // A second mapping sees the pages as a restart after a crash would
+            try (OffHeapDoublyLinkedList<Integer> reopened = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+                Assertions.assertEquals(3, reopened.size());
+                Assertions.assertEquals(1, reopened.get(0));
+                Assertions.assertEquals(2, reopened.get(1));
+                Assertions.assertEquals(9, reopened.get(2));
+                Assertions.assertEquals(1, reopened.indexOf(2));
+            }
+
+            mapped.clear();
+            mapped.addLast(7);
+
+            try (OffHeapDoublyLinkedList<Integer> reopened = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+                Assertions.assertEquals(1, reopened.size());
+                Assertions.assertEquals(7, reopened.getFirst());
+                Assertions.assertEquals(7, reopened.getLast());
+            }
+        }
+    }
+
+    @Test
+    void testMappedRejectsRecordSizeMismatch(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+            mapped.addLast(1);
+        }
+        RecordCodec<Long> longCodec = new RecordCodec<>() {
+
+            @Override
+            public int recordSize() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, int offset, Long record) {
+                buffer.putLong(offset, record);
+            }
+
+            @Override
+            public Long read(ByteBuffer buffer, int offset) {
+                return buffer.getLong(offset);
+            }
+        };
+
+        Assertions.assertThrows(IOException.class, () -> OffHeapDoublyLinkedList.mapped(file, longCodec, 2));
+    }
+
+    @Test
+    void testMappedRejectsForeignFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, new byte[64]);
+
+        Assertions.assertThrows(IOException.class, () -> OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2));
+    }
+
+    @Test
+    void testMappedRejectsShortForeignFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("short.bin");
+        byte[] content = {1, 2, 3, 4, 5};
+        Files.write(file, content);
+
+        Assertions.assertThrows(IOException.class, () -> OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2));
+        Assertions.assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void testMappedRejectsTruncatedFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2)) {
+            for (int i = 0; i < 5; i++) {
+                mapped.addLast(i);
+            }
+        }
+        long length = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length / 2);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2));
+        Assertions.assertEquals(length / 2, Files.size(file));
+    }
+
+    @Test
+    void testMappedFileCanBeTruncatedAndDeletedAfterClose(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 2);
+        for (int i = 0; i < 5; i++) {
+            mapped.addLast(i);
+        }
+        mapped.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        Files.delete(file);
+        Assertions.assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testFailedWriteDoesNotLeakSlot(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("list.bin");
+        try (OffHeapDoublyLinkedList<Integer> mapped = OffHeapDoublyLinkedList.mapped(file, INT_CODEC, 1)) {
+            mapped.addLast(1);
+            Assertions.assertThrows(NullPointerException.class, () -> mapped.addLast(null));
+            mapped.addLast(2);
+            // Header plus two chunks of one 12-byte slot (prev, next and the int record)
+            long length = 32 + 2 * 12;
+            Assertions.assertEquals(length, Files.size(file));
+
+            mapped.removeFirst();
+            Assertions.assertThrows(NullPointerException.class, () -> mapped.addFirst(null));
+            mapped.addLast(3);
+
+            // Both failed writes left their slot free, so no chunk was mapped past the first two
+            Assertions.assertEquals(length, Files.size(file));
+            Assertions.assertEquals(2, mapped.size());
+            Assertions.assertEquals(2, mapped.getFirst());
+            Assertions.assertEquals(3, mapped.getLast());
+        }
+    }
+}